@@ -0,0 +1,72 @@
+package com.pulsarix.micronaut.security.attributes.performance;
+
+import com.pulsarix.micronaut.security.attributes.annotation.Attribute;
+import com.pulsarix.micronaut.security.attributes.annotation.SecuredAttributes;
+import com.pulsarix.micronaut.security.attributes.validation.ResourceIdScopeValidator;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.security.annotation.Secured;
+import io.micronaut.security.rules.SecuredAnnotationRule;
+
+/**
+ * Secured routes exercised by {@link SecuredAttributesLoadTest}.
+ * Each route covers a different way of declaring {@link Attribute}.
+ */
+@Controller("/performance")
+@Secured(SecuredAnnotationRule.IS_AUTHENTICATED)
+public class PerformanceController {
+
+    static final String ISSUER = "performance-issuer";
+
+    @Get("/issuer")
+    @SecuredAttributes(value = {
+            @Attribute(name = "iss", contains = {ISSUER})
+    })
+    public HttpResponse issuer() {
+        return HttpResponse.ok();
+    }
+
+    @Get("/subject")
+    @SecuredAttributes(value = {
+            @Attribute(name = "sub", matches = "user-[0-9]+")
+    })
+    public HttpResponse subject() {
+        return HttpResponse.ok();
+    }
+
+    @Get("/scopes")
+    @SecuredAttributes(value = {
+            @Attribute(name = "scp", contains = {"read", "write"})
+    })
+    public HttpResponse scopes() {
+        return HttpResponse.ok();
+    }
+
+    @Get("/roles")
+    @SecuredAttributes(value = {
+            @Attribute(name = "roles", contains = {"ROLE_USER"})
+    })
+    public HttpResponse roles() {
+        return HttpResponse.ok();
+    }
+
+    @Get("/combined")
+    @SecuredAttributes(value = {
+            @Attribute(name = "iss", contains = {ISSUER}),
+            @Attribute(name = "sub", matches = "user-[0-9]+"),
+            @Attribute(name = "scp", contains = {"read"})
+    })
+    public HttpResponse combined() {
+        return HttpResponse.ok();
+    }
+
+    @Get("/resource/{id}")
+    @SecuredAttributes(value = {
+            @Attribute(validator = ResourceIdScopeValidator.class)
+    })
+    public HttpResponse resource(final @PathVariable String id) {
+        return HttpResponse.ok();
+    }
+}
@@ -0,0 +1,468 @@
+package com.pulsarix.micronaut.security.attributes.performance;
+
+import com.pulsarix.micronaut.security.attributes.rules.SecuredAttributesRule;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpMethod;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.RxHttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.security.authentication.UserDetails;
+import io.micronaut.security.rules.SecurityRuleResult;
+import io.micronaut.security.token.generator.TokenGenerator;
+import io.micronaut.security.token.jwt.generator.claims.ClaimsGenerator;
+import io.micronaut.test.annotation.MicronautTest;
+import io.micronaut.web.router.Router;
+import io.micronaut.web.router.UriRouteMatch;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives concurrent signed JWT traffic against {@link PerformanceController} using an embedded server
+ * and compares allocated bytes, throughput and latency percentiles with {@code performance-baseline.properties}.
+ * Baselines are kept per java specification version, tests are skipped for versions without a baseline.
+ * Running with {@code -Dperformance.record=true} writes the measured values instead of asserting them.
+ */
+@Tag("performance")
+@MicronautTest(environments = "performance")
+public class SecuredAttributesLoadTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SecuredAttributesLoadTest.class);
+
+    private static final String BASELINE_RESOURCE = "/performance-baseline.properties";
+
+    private static final String RECORD_FILE = "build/performance/performance-baseline.properties";
+
+    private static final int USERS = 8;
+
+    /**
+     * Secured routes by baseline key, {@code {id}} is replaced by resource id of the signed user.
+     */
+    private static final Map<String, String> ROUTES = new LinkedHashMap<>();
+
+    static {
+        ROUTES.put("issuer", "/performance/issuer");
+        ROUTES.put("subject", "/performance/subject");
+        ROUTES.put("scopes", "/performance/scopes");
+        ROUTES.put("roles", "/performance/roles");
+        ROUTES.put("combined", "/performance/combined");
+        ROUTES.put("resource", "/performance/resource/{id}");
+    }
+
+    private static final Properties RECORDED = new Properties();
+
+    private static Properties baseline;
+
+    @Inject
+    @Client("/")
+    RxHttpClient client;
+
+    @Inject
+    ClaimsGenerator claimsGenerator;
+
+    @Inject
+    TokenGenerator tokenGenerator;
+
+    @Inject
+    Router router;
+
+    @Inject
+    SecuredAttributesRule securedAttributesRule;
+
+    private ExecutorService executor;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        // debug logging of the rule would dominate both latency and allocations, see logback-performance.xml
+        Assumptions.assumeFalse(LoggerFactory.getLogger(SecuredAttributesRule.class).isDebugEnabled(),
+                "Debug logging of SecuredAttributesRule is enabled, run with ./gradlew performanceTest");
+        baseline = new Properties();
+        try (InputStream stream = SecuredAttributesLoadTest.class.getResourceAsStream(BASELINE_RESOURCE)) {
+            baseline.load(stream);
+        }
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        if (recording() && !RECORDED.isEmpty()) {
+            File file = new File(System.getProperty("performance.record.file", RECORD_FILE));
+            file.getParentFile().mkdirs();
+            Properties properties = new Properties();
+            if (file.exists()) {
+                try (InputStream stream = new FileInputStream(file)) {
+                    properties.load(stream);
+                }
+            }
+            properties.putAll(RECORDED);
+            try (OutputStream stream = new FileOutputStream(file)) {
+                properties.store(stream, "Measured by SecuredAttributesLoadTest");
+            }
+            LOG.info("Recorded performance baselines to {}", file.getAbsolutePath());
+        }
+    }
+
+    @BeforeEach
+    void startClients() {
+        executor = Executors.newFixedThreadPool(baselineInt("performance.concurrency"));
+    }
+
+    @AfterEach
+    void stopClients() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testAttributesEnforced() {
+        // all routes are authenticated only, so rejections prove secured attributes rule is on the request path
+        SignedUser user = createSignedUser("user-0", UUID.randomUUID().toString());
+        assertForbidden(createSignedUser("admin", UUID.randomUUID().toString()), "/performance/subject");
+        assertForbidden(user, "/performance/resource/" + UUID.randomUUID());
+    }
+
+    @Test
+    void testRequestAllocation() throws Exception {
+        assumeBaselines("performance.measured.allocation.request");
+        com.sun.management.ThreadMXBean threadBean = threadBean();
+        List<SignedUser> users = createSignedUsers();
+        int requests = baselineInt("performance.measured.requests");
+
+        runLoad(users, baselineInt("performance.warmup.requests"));
+        double[] allocatedPerRequest = new double[runs()];
+        for (int run = 0; run < allocatedPerRequest.length; run++) {
+            Map<Long, Long> allocatedBefore = allocatedBytes(threadBean);
+            runLoad(users, requests);
+            allocatedPerRequest[run] = allocatedSince(threadBean, allocatedBefore) / (double) requests;
+        }
+        LOG.info("Secured attributes load: requests={} allocated={} bytes/request", requests, Arrays.toString(allocatedPerRequest));
+
+        assertAtMost("Allocated bytes per request", median(allocatedPerRequest),
+                "performance.measured.allocation.request", "performance.tolerance.allocation");
+    }
+
+    @Test
+    @Tag("wallclock")
+    void testThroughputAndLatency() throws Exception {
+        assumeBaselines("performance.measured.throughput",
+                "performance.measured.latency.p50", "performance.measured.latency.p99");
+        List<SignedUser> users = createSignedUsers();
+        int requests = baselineInt("performance.measured.requests");
+
+        runLoad(users, baselineInt("performance.warmup.requests"));
+        double[] throughput = new double[runs()];
+        double[] p50 = new double[runs()];
+        double[] p99 = new double[runs()];
+        for (int run = 0; run < throughput.length; run++) {
+            long start = System.nanoTime();
+            long[] latencies = runLoad(users, requests);
+            long elapsed = System.nanoTime() - start;
+            Arrays.sort(latencies);
+            throughput[run] = requests / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+            p50[run] = percentile(latencies, 50);
+            p99[run] = percentile(latencies, 99);
+        }
+        LOG.info("Secured attributes load: requests={} throughput={} req/s p50={} ms p99={} ms",
+                requests, Arrays.toString(throughput), Arrays.toString(p50), Arrays.toString(p99));
+
+        assertAtLeast("Throughput (req/s)", median(throughput),
+                "performance.measured.throughput", "performance.tolerance.throughput");
+        assertAtMost("Latency p50 (ms)", median(p50),
+                "performance.measured.latency.p50", "performance.tolerance.latency");
+        assertAtMost("Latency p99 (ms)", median(p99),
+                "performance.measured.latency.p99", "performance.tolerance.latency");
+    }
+
+    @Test
+    void testCheckAllocation() {
+        List<String> keys = new ArrayList<>();
+        for (String route : ROUTES.keySet()) {
+            keys.add("performance.measured.allocation.check." + route);
+        }
+        assumeBaselines(keys.toArray(new String[0]));
+        com.sun.management.ThreadMXBean threadBean = threadBean();
+        SignedUser user = createSignedUser("user-0", UUID.randomUUID().toString());
+        int iterations = baselineInt("performance.check.iterations");
+        long threadId = Thread.currentThread().getId();
+
+        for (Map.Entry<String, String> route : ROUTES.entrySet()) {
+            String path = user.path(route.getValue());
+            HttpRequest<Object> request = HttpRequest.GET(path);
+            UriRouteMatch<Object, Object> routeMatch = router.<Object, Object>route(HttpMethod.GET, path)
+                    .orElseThrow(() -> new IllegalStateException("no route for " + path));
+
+            // warm up so that lazily compiled patterns and JIT are not accounted
+            for (int i = 0; i < iterations; i++) {
+                securedAttributesRule.check(request, routeMatch, user.claims);
+            }
+
+            double[] allocatedPerCheck = new double[runs()];
+            SecurityRuleResult result = SecurityRuleResult.UNKNOWN;
+            for (int run = 0; run < allocatedPerCheck.length; run++) {
+                long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < iterations; i++) {
+                    result = securedAttributesRule.check(request, routeMatch, user.claims);
+                }
+                allocatedPerCheck[run] = (threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / (double) iterations;
+            }
+            LOG.info("Secured attributes check: route={} allocated={} bytes/check", route.getKey(), Arrays.toString(allocatedPerCheck));
+
+            Assertions.assertEquals(SecurityRuleResult.ALLOWED, result);
+            assertAtMost("Allocated bytes per check of " + route.getKey(), median(allocatedPerCheck),
+                    "performance.measured.allocation.check." + route.getKey(), "performance.tolerance.allocation");
+        }
+    }
+
+    /**
+     * Sends given amount of requests spread over secured routes and returns latency of each request.
+     *
+     * @param users    users signing requests
+     * @param requests total number of requests
+     * @return latencies in nanoseconds
+     */
+    long[] runLoad(List<SignedUser> users, int requests) throws Exception {
+        int concurrency = baselineInt("performance.concurrency");
+        String[] routes = ROUTES.values().toArray(new String[0]);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int worker = 0; worker < concurrency; worker++) {
+            int offset = worker;
+            int count = requests / concurrency + (worker < requests % concurrency ? 1 : 0);
+            futures.add(executor.submit((Callable<long[]>) () -> {
+                long[] latencies = new long[count];
+                for (int i = 0; i < count; i++) {
+                    int sequence = offset + i * concurrency;
+                    SignedUser user = users.get(sequence % users.size());
+                    HttpRequest<Object> request = HttpRequest.GET(user.path(routes[sequence % routes.length]))
+                            .header(HttpHeaders.AUTHORIZATION, "Bearer " + user.token);
+                    long start = System.nanoTime();
+                    HttpResponse<String> response = client.toBlocking().exchange(request, String.class);
+                    latencies[i] = System.nanoTime() - start;
+                    Assertions.assertEquals(HttpStatus.OK, response.getStatus());
+                }
+                return latencies;
+            }));
+        }
+        long[] latencies = new long[requests];
+        int position = 0;
+        for (Future<long[]> future : futures) {
+            long[] workerLatencies = future.get();
+            System.arraycopy(workerLatencies, 0, latencies, position, workerLatencies.length);
+            position += workerLatencies.length;
+        }
+        return latencies;
+    }
+
+    void assertForbidden(SignedUser user, String path) {
+        HttpClientResponseException thrown = Assertions.assertThrows(HttpClientResponseException.class, () ->
+                client.toBlocking().exchange(HttpRequest.GET(path)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + user.token), String.class));
+        Assertions.assertEquals(HttpStatus.FORBIDDEN, thrown.getResponse().getStatus());
+    }
+
+    List<SignedUser> createSignedUsers() {
+        List<SignedUser> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(createSignedUser("user-" + i, UUID.randomUUID().toString()));
+        }
+        return users;
+    }
+
+    SignedUser createSignedUser(String username, String resourceId) {
+        UserDetails user = new UserDetails(username, Collections.singletonList("ROLE_USER"));
+        Map<String, Object> claims = new HashMap<>(claimsGenerator.generateClaims(user, 3600));
+        claims.put("iss", PerformanceController.ISSUER);
+        claims.put("scp", Arrays.asList("read", "write", resourceId));
+        String token = tokenGenerator.generateToken(claims)
+                .orElseThrow(() -> new IllegalStateException("no token provided"));
+        return new SignedUser(token, resourceId, claims);
+    }
+
+    com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean,
+                "Thread allocated memory is not available");
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assumptions.assumeTrue(allocationBean.isThreadAllocatedMemorySupported(),
+                "Thread allocated memory is not supported");
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        return allocationBean;
+    }
+
+    /**
+     * Gets allocated bytes of every live thread.
+     *
+     * @param threadBean thread bean
+     * @return allocated bytes by thread id
+     */
+    Map<Long, Long> allocatedBytes(com.sun.management.ThreadMXBean threadBean) {
+        long[] threadIds = threadBean.getAllThreadIds();
+        long[] allocated = threadBean.getThreadAllocatedBytes(threadIds);
+        Map<Long, Long> allocatedBytes = new HashMap<>();
+        for (int i = 0; i < threadIds.length; i++) {
+            if (allocated[i] >= 0) {
+                allocatedBytes.put(threadIds[i], allocated[i]);
+            }
+        }
+        return allocatedBytes;
+    }
+
+    /**
+     * Sums per thread allocation deltas. Threads started after the snapshot are accounted in full,
+     * threads which are gone are not accounted at all so their earlier allocations are not subtracted.
+     *
+     * @param threadBean thread bean
+     * @param before     snapshot taken by {@link #allocatedBytes(com.sun.management.ThreadMXBean)}
+     * @return bytes allocated since snapshot
+     */
+    long allocatedSince(com.sun.management.ThreadMXBean threadBean, Map<Long, Long> before) {
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : allocatedBytes(threadBean).entrySet()) {
+            total += entry.getValue() - before.getOrDefault(entry.getKey(), 0L);
+        }
+        return total;
+    }
+
+    double percentile(long[] sortedLatencies, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    /**
+     * Asserts that actual value does not exceed measured baseline increased by tolerance.
+     */
+    void assertAtMost(String name, double actual, String measuredKey, String toleranceKey) {
+        if (recording()) {
+            RECORDED.setProperty(versioned(measuredKey), format(actual));
+            return;
+        }
+        double measured = baselineDouble(versioned(measuredKey));
+        double tolerance = baselineDouble(toleranceKey);
+        double limit = measured * (1 + tolerance);
+        Assertions.assertTrue(actual <= limit, name + " " + format(actual) + " exceeds limit " + format(limit)
+                + " (baseline " + format(measured) + " +" + format(tolerance * 100) + "%)");
+    }
+
+    /**
+     * Asserts that actual value is not below measured baseline decreased by tolerance.
+     */
+    void assertAtLeast(String name, double actual, String measuredKey, String toleranceKey) {
+        if (recording()) {
+            RECORDED.setProperty(versioned(measuredKey), format(actual));
+            return;
+        }
+        double measured = baselineDouble(versioned(measuredKey));
+        double tolerance = baselineDouble(toleranceKey);
+        double limit = measured * (1 - tolerance);
+        Assertions.assertTrue(actual >= limit, name + " " + format(actual) + " is below limit " + format(limit)
+                + " (baseline " + format(measured) + " -" + format(tolerance * 100) + "%)");
+    }
+
+    /**
+     * Skips a test when the running java version has no recorded baseline.
+     */
+    void assumeBaselines(String... measuredKeys) {
+        if (recording()) {
+            return;
+        }
+        for (String measuredKey : measuredKeys) {
+            Assumptions.assumeTrue(baselineValue(versioned(measuredKey)) != null,
+                    "No baseline " + versioned(measuredKey) + ", record it with -Dperformance.record=true");
+        }
+    }
+
+    /**
+     * Appends java specification version to given key, e.g. {@code .8} or {@code .11}.
+     */
+    String versioned(String key) {
+        String version = System.getProperty("java.specification.version");
+        return key + "." + (version.startsWith("1.") ? version.substring(2) : version);
+    }
+
+    static boolean recording() {
+        return Boolean.getBoolean("performance.record");
+    }
+
+    int runs() {
+        return baselineInt("performance.runs");
+    }
+
+    String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    int baselineInt(String key) {
+        return (int) baselineDouble(key);
+    }
+
+    double baselineDouble(String key) {
+        String value = baselineValue(key);
+        Assertions.assertNotNull(value, "No baseline " + key + " in " + BASELINE_RESOURCE);
+        return Double.parseDouble(value.trim());
+    }
+
+    String baselineValue(String key) {
+        return System.getProperty(key, baseline.getProperty(key));
+    }
+
+    /**
+     * Signed token along with the claims it carries.
+     */
+    static class SignedUser {
+
+        final String token;
+
+        final String resourceId;
+
+        final Map<String, Object> claims;
+
+        SignedUser(String token, String resourceId, Map<String, Object> claims) {
+            this.token = token;
+            this.resourceId = resourceId;
+            this.claims = claims;
+        }
+
+        String path(String route) {
+            return route.replace("{id}", resourceId);
+        }
+    }
+}